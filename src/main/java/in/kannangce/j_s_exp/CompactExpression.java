@@ -0,0 +1,364 @@
+package in.kannangce.j_s_exp;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Flat encoding of an s-expression, that can be evaluated directly with
+ * {@link Evaluator#evaluate(CompactExpression)}.
+ * <p>
+ * The expression is stored as a sequence of int words, in prefix order,
+ * <ul>
+ * <li>A negative word is an expression, holding the id of the operator in the
+ * {@link ConstantPool} and the number of parameters. It is followed by its
+ * parameters, last parameter first, so that they can be evaluated in the same
+ * order as {@link Evaluator#evaluate(List)} does.</li>
+ * <li>A non-negative word is a literal, holding its id in the
+ * {@link ConstantPool}.</li>
+ * </ul>
+ * The words live either in an int array in the heap, or in a region of a
+ * {@link ByteBuffer} that can be shared by many expressions, see
+ * {@link ExpressionArena}. The literals and operators are shared with the other
+ * expressions through the {@link ConstantPool}.
+ *
+ * @author kannan.r
+ */
+public class CompactExpression {
+
+    /**
+     * The maximum number of parameters an expression can have.
+     */
+    public static final int MAX_PARAMS = 0x7FFF;
+
+    private static final int PARAMS_SHIFT = 16;
+
+    private static final int OPERATOR_MASK = 0xFFFF;
+
+    private final int[] words;
+
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final int length;
+
+    private final ConstantPool pool;
+
+    private CompactExpression(int[] words, ByteBuffer buffer, int offset, int length, ConstantPool pool) {
+        this.words = words;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes the given s-expression in the heap.
+     *
+     * @param tree The s-expression to be encoded.
+     * @param pool The pool in which the operators and literals to be stored.
+     * @return The encoded expression.
+     * @throws IllegalArgumentException If the given tree is not a valid
+     *                                  s-expression.
+     */
+    public static CompactExpression encode(List<Object> tree, ConstantPool pool) {
+        int[] words = toCode(tree, pool);
+        return new CompactExpression(words, null, 0, words.length, pool);
+    }
+
+    /**
+     * Creates an expression from the words in the given region of the buffer, as
+     * written by {@link #writeTo(ByteBuffer)}. The buffer is shared, not copied,
+     * and only read with absolute gets. So its position is free to be changed
+     * afterwards, but its limit must keep covering the region.
+     *
+     * @param buffer The buffer containing the encoded expression.
+     * @param offset The byte offset of the expression in the buffer.
+     * @param length The number of words in the expression.
+     * @param pool   The pool, with which the expression was encoded.
+     * @return The expression backed by the given buffer.
+     */
+    public static CompactExpression wrap(ByteBuffer buffer, int offset, int length, ConstantPool pool) {
+        if (offset < 0 || length < 1 || offset + (long) length * Integer.BYTES > buffer.limit()) {
+            throw new IndexOutOfBoundsException(
+                    String.format("The region at %d of %d words is out of the buffer", offset, length));
+        }
+        return new CompactExpression(null, buffer, offset, length, pool);
+    }
+
+    /**
+     * Writes the encoded expression to the given buffer, starting from its
+     * current position. Lets many expressions to be packed in a single buffer.
+     *
+     * @param buffer The buffer to write to.
+     * @return The number of bytes written.
+     */
+    public int writeTo(ByteBuffer buffer) {
+        for (int i = 0; i < length; i++) {
+            buffer.putInt(word(i));
+        }
+        return length * Integer.BYTES;
+    }
+
+    /**
+     * Gets the pool of this expression.
+     *
+     * @return The pool in which the operators and literals are stored.
+     */
+    public ConstantPool pool() {
+        return pool;
+    }
+
+    /**
+     * Gets the number of words in the expression.
+     *
+     * @return The number of words.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Decodes the expression back to the form of List.
+     *
+     * @return The s-expression.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> toList() {
+        return (List<Object>) decode(new int[] { 0 });
+    }
+
+    /**
+     * Gets the word at the given position.
+     *
+     * @param position The position of the word.
+     * @return The word.
+     */
+    int word(int position) {
+        if (words != null) {
+            return words[position];
+        }
+        return buffer.getInt(offset + position * Integer.BYTES);
+    }
+
+    /**
+     * Tells if the given word is an expression.
+     *
+     * @param word The word to be tested.
+     * @return true if the word is an expression, false if it's a literal.
+     */
+    static boolean isExpression(int word) {
+        return word < 0;
+    }
+
+    /**
+     * Gets the operator of the given expression word.
+     *
+     * @param word The expression word.
+     * @return The operator.
+     */
+    String operator(int word) {
+        return pool.operator(word & OPERATOR_MASK);
+    }
+
+    /**
+     * Gets the number of parameters of the given expression word.
+     *
+     * @param word The expression word.
+     * @return The number of parameters.
+     */
+    static int paramCount(int word) {
+        return (word & Integer.MAX_VALUE) >>> PARAMS_SHIFT;
+    }
+
+    /**
+     * Gets the literal of the given literal word.
+     *
+     * @param word The literal word.
+     * @return The literal.
+     */
+    Object constant(int word) {
+        return pool.constant(word);
+    }
+
+    /**
+     * Gets the literal or a {@link Node} view of the expression at the given
+     * position, without decoding it.
+     *
+     * @param position The position of the literal or expression.
+     * @return The literal, or the view of the expression.
+     */
+    Object element(int position) {
+        int word = word(position);
+        if (isExpression(word)) {
+            return new Node(this, position);
+        }
+        return constant(word);
+    }
+
+    /**
+     * Gets the position next to the literal or expression at the given position.
+     *
+     * @param position The position of the literal or expression.
+     * @return The position after it.
+     */
+    int skip(int position) {
+        int pending = 1;
+        while (pending > 0) {
+            int word = word(position++);
+            pending--;
+            if (isExpression(word)) {
+                pending += paramCount(word);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Decodes the expression or literal at the cursor, moving the cursor past it.
+     *
+     * @param cursor Single element array holding the position to decode from.
+     * @return The decoded s-expression or literal.
+     */
+    private Object decode(int[] cursor) {
+        int word = word(cursor[0]++);
+        if (!isExpression(word)) {
+            return constant(word);
+        }
+        Object[] tree = new Object[paramCount(word) + 1];
+        tree[0] = operator(word);
+        for (int i = tree.length - 1; i > 0; i--) {
+            tree[i] = decode(cursor);
+        }
+        return new ArrayList<>(Arrays.asList(tree));
+    }
+
+    /**
+     * Encodes the given s-expression to words.
+     *
+     * @param tree The s-expression to be encoded.
+     * @param pool The pool in which the operators and literals to be stored.
+     * @return The encoded words.
+     */
+    static int[] toCode(List<Object> tree, ConstantPool pool) {
+        List<Integer> words = new ArrayList<>();
+        encode(tree, pool, words);
+        return words.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Appends the words of the given s-expression.
+     *
+     * @param tree  The s-expression to be encoded.
+     * @param pool  The pool in which the operators and literals to be stored.
+     * @param words The words to append to.
+     */
+    @SuppressWarnings("unchecked")
+    private static void encode(List<Object> tree, ConstantPool pool, List<Integer> words) {
+        if (tree.isEmpty() || !(tree.get(0) instanceof String)) {
+            throw new IllegalArgumentException(
+                    String.format("The expression %s doesn't start with an operator", tree));
+        }
+        int paramCount = tree.size() - 1;
+        if (paramCount > MAX_PARAMS) {
+            throw new IllegalArgumentException(
+                    String.format("The expression can't have more than %d parameters", MAX_PARAMS));
+        }
+        words.add(Integer.MIN_VALUE | paramCount << PARAMS_SHIFT | pool.operatorId((String) tree.get(0)));
+        for (int i = paramCount; i > 0; i--) {
+            Object currParam = tree.get(i);
+            if (currParam instanceof List) {
+                encode((List<Object>) currParam, pool, words);
+            } else {
+                words.add(pool.constantId(currParam));
+            }
+        }
+    }
+
+    /**
+     * Read-only view of an expression within the encoded words, in the form of
+     * List. The elements are looked up only when asked for, and the nested
+     * expressions are returned as views as well. Lets the macros get their
+     * parameters without the expression being decoded, and
+     * {@link Evaluator#evaluate(List)} evaluates the view directly on the
+     * encoded words.
+     */
+    static class Node extends AbstractList<Object> {
+
+        private final CompactExpression expression;
+
+        private final int position;
+
+        Node(CompactExpression expression, int position) {
+            this.expression = expression;
+            this.position = position;
+        }
+
+        CompactExpression expression() {
+            return expression;
+        }
+
+        int position() {
+            return position;
+        }
+
+        @Override
+        public int size() {
+            return paramCount(expression.word(position)) + 1;
+        }
+
+        @Override
+        public Object get(int index) {
+            int word = expression.word(position);
+            int size = paramCount(word) + 1;
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(
+                        String.format("Index %d is out of the expression of size %d", index, size));
+            }
+            if (index == 0) {
+                return expression.operator(word);
+            }
+            // The parameters are encoded last parameter first.
+            int paramPosition = position + 1;
+            for (int i = size - 1; i > index; i--) {
+                paramPosition = expression.skip(paramPosition);
+            }
+            return expression.element(paramPosition);
+        }
+
+        @Override
+        public ListIterator<Object> listIterator(int index) {
+            // Looks up all the elements in a single pass, instead of get()
+            // skipping the preceding parameters for every element.
+            return Collections.unmodifiableList(Arrays.asList(elements())).listIterator(index);
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return listIterator(0);
+        }
+
+        /**
+         * Gets all the elements of the expression, walking the encoded words once.
+         *
+         * @return The operator followed by the parameters.
+         */
+        private Object[] elements() {
+            int word = expression.word(position);
+            Object[] elements = new Object[paramCount(word) + 1];
+            elements[0] = expression.operator(word);
+            int paramPosition = position + 1;
+            for (int i = elements.length - 1; i > 0; i--) {
+                elements[i] = expression.element(paramPosition);
+                paramPosition = expression.skip(paramPosition);
+            }
+            return elements;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package in.kannangce.j_s_exp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of the operators and literals referred by the {@link CompactExpression}s.
+ * <p>
+ * Equal literals and operators are stored only once, so a pool shared by many
+ * expressions keeps a single copy of each of them. The ids handed out by the
+ * pool are stable for the life of the pool. Adding to the pool is thread-safe
+ * and the lookups can be done concurrently with the additions.
+ *
+ * @author kannan.r
+ */
+public class ConstantPool {
+
+    /**
+     * The maximum number of operators a pool can hold.
+     */
+    public static final int MAX_OPERATORS = 1 << 16;
+
+    private final Map<Object, Integer> constantIds = new HashMap<>();
+
+    private final Map<String, Integer> operatorIds = new HashMap<>();
+
+    private volatile Object[] constants = new Object[16];
+
+    private volatile String[] operators = new String[16];
+
+    /**
+     * Gets the id of the given literal, adding it to the pool if not already
+     * available.
+     *
+     * @param constant The literal to be pooled.
+     * @return The id of the literal.
+     */
+    public synchronized int constantId(Object constant) {
+        Integer id = constantIds.get(constant);
+        if (id != null) {
+            return id;
+        }
+        id = constantIds.size();
+        Object[] arr = ensureCapacity(constants, id);
+        arr[id] = constant;
+        // Publishes the element written above to the readers.
+        constants = arr;
+        constantIds.put(constant, id);
+        return id;
+    }
+
+    /**
+     * Gets the id of the given operator, adding it to the pool if not already
+     * available.
+     *
+     * @param operator The operator to be pooled.
+     * @return The id of the operator.
+     * @throws IllegalArgumentException If the pool already has
+     *                                  {@link #MAX_OPERATORS} operators.
+     */
+    public synchronized int operatorId(String operator) {
+        Integer id = operatorIds.get(operator);
+        if (id != null) {
+            return id;
+        }
+        id = operatorIds.size();
+        if (id >= MAX_OPERATORS) {
+            throw new IllegalArgumentException(
+                    String.format("The pool can't hold more than %d operators", MAX_OPERATORS));
+        }
+        String[] arr = ensureCapacity(operators, id);
+        arr[id] = operator;
+        operators = arr;
+        operatorIds.put(operator, id);
+        return id;
+    }
+
+    /**
+     * Gets the literal for the given id.
+     *
+     * @param id The id returned by {@link #constantId(Object)}.
+     * @return The literal for the id.
+     */
+    public Object constant(int id) {
+        return constants[id];
+    }
+
+    /**
+     * Gets the operator for the given id.
+     *
+     * @param id The id returned by {@link #operatorId(String)}.
+     * @return The operator for the id.
+     */
+    public String operator(int id) {
+        return operators[id];
+    }
+
+    /**
+     * Gets the number of literals in the pool.
+     *
+     * @return The number of literals.
+     */
+    public synchronized int constantCount() {
+        return constantIds.size();
+    }
+
+    /**
+     * Gets the number of operators in the pool.
+     *
+     * @return The number of operators.
+     */
+    public synchronized int operatorCount() {
+        return operatorIds.size();
+    }
+
+    /**
+     * Returns an array that can hold the given index, copying the given array if
+     * it is not big enough.
+     *
+     * @param <T>   The type of the array.
+     * @param arr   The array to be checked.
+     * @param index The index to be held.
+     * @return The given array or its bigger copy.
+     */
+    private static <T> T[] ensureCapacity(T[] arr, int index) {
+        if (index < arr.length) {
+            return arr;
+        }
+        return Arrays.copyOf(arr, Math.max(index + 1, arr.length * 2));
+    }
+}
@@ -1,5 +1,6 @@
 package in.kannangce.j_s_exp;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,82 @@ public class Evaluator {
      */
     public static interface CustomMacro {
         List<Object> apply(Evaluator contenxt, Object... objects);
+
+        /**
+         * Tells if the macro can be expanded once by {@link Evaluator#expand(List)},
+         * instead of on every evaluation. That is the case when the expansion depends
+         * only on the parameters as given, i.e the macro neither reads the context
+         * nor evaluates its parameters.
+         *
+         * @return true if the macro is safe to be expanded ahead of the evaluation.
+         * false otherwise.
+         */
+        default boolean isExpansionTimeSafe() {
+            return false;
+        }
+
+        /**
+         * Tells if the macro uses its parameters only by evaluating them as
+         * ordinary expressions, without inspecting them. If so,
+         * {@link Evaluator#expand(List)} expands the macros within the parameters,
+         * even when this macro itself is not expanded.
+         *
+         * @return true if the parameters are used only as expressions. false
+         * otherwise.
+         */
+        default boolean paramsAreExpressions() {
+            return false;
+        }
+
+        /**
+         * Declares the given macro as safe to be expanded ahead of the evaluation.
+         *
+         * @param macro The macro whose expansion depends only on its parameters.
+         * @return The macro, for which {@link #isExpansionTimeSafe()} is true.
+         */
+        static CustomMacro expansionTimeSafe(CustomMacro macro) {
+            return new CustomMacro() {
+                @Override
+                public List<Object> apply(Evaluator evaluator, Object... objects) {
+                    return macro.apply(evaluator, objects);
+                }
+
+                @Override
+                public boolean isExpansionTimeSafe() {
+                    return true;
+                }
+
+                @Override
+                public boolean paramsAreExpressions() {
+                    return macro.paramsAreExpressions();
+                }
+            };
+        }
+
+        /**
+         * Declares the given macro as using its parameters only as expressions.
+         *
+         * @param macro The macro that only evaluates its parameters.
+         * @return The macro, for which {@link #paramsAreExpressions()} is true.
+         */
+        static CustomMacro withExpressionParams(CustomMacro macro) {
+            return new CustomMacro() {
+                @Override
+                public List<Object> apply(Evaluator evaluator, Object... objects) {
+                    return macro.apply(evaluator, objects);
+                }
+
+                @Override
+                public boolean isExpansionTimeSafe() {
+                    return macro.isExpansionTimeSafe();
+                }
+
+                @Override
+                public boolean paramsAreExpressions() {
+                    return true;
+                }
+            };
+        }
     }
 
     /**
@@ -68,6 +145,12 @@ public class Evaluator {
      *                                      not allowed
      */
     public Object evaluate(List<Object> tree) {
+        if (tree instanceof CompactExpression.Node) {
+            // Parameter of a macro from an encoded expression, evaluate it as encoded.
+            CompactExpression.Node node = (CompactExpression.Node) tree;
+            return evaluate(node.expression(), new int[] { node.position() });
+        }
+
         String operator = (String) tree.get(0);
 
         if (!allowedOperator(operator)) {
@@ -90,6 +173,119 @@ public class Evaluator {
                 .apply(context, getParams(context, tree, true));
     }
 
+    /**
+     * Expands the macros of the given s-expression that are
+     * {@link CustomMacro#isExpansionTimeSafe() expansion time safe}, so that they
+     * don't have to be expanded on every evaluation. Meant to be done once, when
+     * the s-expression is loaded. Evaluating the returned s-expression gives the
+     * same result as evaluating the given one.
+     * <p>
+     * The other macros are retained as is. Their parameters are expanded only if
+     * the macro {@link CustomMacro#paramsAreExpressions() uses them as
+     * expressions}, as otherwise it may inspect them un-evaluated. The operators
+     * that are not allowed are retained as is as well, so that they fail only if
+     * they are reached on evaluation.
+     * <p>
+     * The given s-expression is not modified, the sub-trees without any
+     * expansion are shared with the returned one.
+     *
+     * @param tree The s-expression to be expanded.
+     * @return The s-expression with the safe macros expanded.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> expand(List<Object> tree) {
+        String operator = (String) tree.get(0);
+
+        if (!allowedOperator(operator)) {
+            // May be in a path that is never evaluated, leave it to the evaluation.
+            return tree;
+        }
+
+        if (isMacro(operator)) {
+            CustomMacro macro = allowedMacros.get(operator);
+            if (macro.isExpansionTimeSafe()) {
+                // The expansion can itself contain macros, expand it recursively.
+                return expand(macro.apply(this, getParams(context, tree, false)));
+            }
+            if (!macro.paramsAreExpressions()) {
+                return tree;
+            }
+        }
+
+        // The params of functions are evaluated as expressions, expand them too.
+        List<Object> expanded = tree;
+        for (int i = 1; i < tree.size(); i++) {
+            Object currParam = tree.get(i);
+            if (currParam instanceof List) {
+                Object expandedParam = expand((List<Object>) currParam);
+                if (expandedParam != currParam) {
+                    if (expanded == tree) {
+                        expanded = new ArrayList<>(tree);
+                    }
+                    expanded.set(i, expandedParam);
+                }
+            }
+        }
+        return expanded;
+    }
+
+    /**
+     * Evaluates the given s-expression in the form of {@link CompactExpression}.
+     * The result is the same as evaluating the s-expression it was encoded from
+     * with {@link Evaluator#evaluate(List)}.
+     *
+     * @param expression The encoded s-expression to be evaluated.
+     * @return The return value of the evaluated expression.
+     * @throws UnsupportedOperatorException If the given expression uses the
+     *                                      function that is not allowed
+     */
+    public Object evaluate(CompactExpression expression) {
+        return evaluate(expression, new int[] { 0 });
+    }
+
+    /**
+     * Evaluates the encoded s-expression at the cursor, moving the cursor past
+     * it.
+     *
+     * @param expression The encoded s-expression.
+     * @param cursor     Single element array holding the position of the
+     *                   s-expression to be evaluated.
+     * @return The return value of the evaluated expression.
+     */
+    private Object evaluate(CompactExpression expression, int[] cursor) {
+        int word = expression.word(cursor[0]++);
+        String operator = expression.operator(word);
+
+        if (!allowedOperator(operator)) {
+            throw new UnsupportedOperatorException(
+                    String.format("The operator %s is not allowed to evaluate", operator));
+        }
+
+        // The parameters are encoded last parameter first.
+        Object[] params = new Object[CompactExpression.paramCount(word)];
+
+        if (isMacro(operator)) {
+            // Macros get their parameters un-evaluated, as views over the
+            // encoded words, so that they are not decoded.
+            for (int i = params.length - 1; i >= 0; i--) {
+                params[i] = expression.element(cursor[0]);
+                cursor[0] = expression.skip(cursor[0]);
+            }
+            return evaluate(allowedMacros.get(operator).apply(this, params));
+        }
+
+        for (int i = params.length - 1; i >= 0; i--) {
+            int currWord = expression.word(cursor[0]);
+            if (CompactExpression.isExpression(currWord)) {
+                params[i] = evaluate(expression, cursor);
+            } else {
+                params[i] = expression.constant(currWord);
+                cursor[0]++;
+            }
+        }
+        return allowedFns.get(operator).apply(context, params);
+    }
+
     /**
      * Gets the parameters of a given expression.
      *
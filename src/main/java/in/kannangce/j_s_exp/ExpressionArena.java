@@ -0,0 +1,89 @@
+package in.kannangce.j_s_exp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Packs the {@link CompactExpression}s in large direct {@link ByteBuffer}s,
+ * outside the heap.
+ * <p>
+ * The buffers are allocated in chunks, each of which holds many expressions,
+ * so that an expression costs only its words and a small object referring to
+ * its region in the chunk. An expression bigger than the chunk gets a buffer
+ * of its own.
+ *
+ * @author kannan.r
+ */
+public class ExpressionArena {
+
+    private final ConstantPool pool;
+
+    private final int chunkBytes;
+
+    private ByteBuffer chunk;
+
+    /**
+     * Creates an arena instance.
+     *
+     * @param pool       The pool in which the operators and literals of the
+     *                   expressions to be stored.
+     * @param chunkBytes The size of each buffer allocated by the arena, in bytes.
+     */
+    public ExpressionArena(ConstantPool pool, int chunkBytes) {
+        if (chunkBytes < Integer.BYTES) {
+            throw new IllegalArgumentException("Chunk should be able to hold at least a word");
+        }
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Encodes the given s-expression into the arena.
+     *
+     * @param tree The s-expression to be encoded.
+     * @return The encoded expression, backed by the arena.
+     * @throws IllegalArgumentException If the given tree is not a valid
+     *                                  s-expression.
+     */
+    public synchronized CompactExpression add(List<Object> tree) {
+        int[] words = CompactExpression.toCode(tree, pool);
+        int bytes = words.length * Integer.BYTES;
+
+        ByteBuffer target;
+        if (bytes > chunkBytes) {
+            // Doesn't waste the rest of the current chunk for an oversized one.
+            target = allocate(bytes);
+        } else {
+            if (chunk == null || chunk.remaining() < bytes) {
+                chunk = allocate(chunkBytes);
+            }
+            target = chunk;
+        }
+
+        int offset = target.position();
+        for (int word : words) {
+            target.putInt(word);
+        }
+        return CompactExpression.wrap(target, offset, words.length, pool);
+    }
+
+    /**
+     * Gets the pool of this arena.
+     *
+     * @return The pool in which the operators and literals are stored.
+     */
+    public ConstantPool pool() {
+        return pool;
+    }
+
+    /**
+     * Allocates a direct buffer in the native byte order.
+     *
+     * @param bytes The size of the buffer.
+     * @return The allocated buffer.
+     */
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -68,7 +68,7 @@ public class Operators {
      * evaluation</li>
      * </ol>
      */
-    public static CustomMacro MC_IF_ELSE = (Evaluator evaluator, Object... objs) -> {
+    public static CustomMacro MC_IF_ELSE = CustomMacro.withExpressionParams((Evaluator evaluator, Object... objs) -> {
 
         Object condition = nullIfUnavailable(objs, 0);
 
@@ -84,5 +84,54 @@ public class Operators {
             // Returns the expression of false path.
             return Arrays.asList("identity", falseExpr);
         }
-    };
+    });
+
+    /**
+     * Short-circuit and, evaluates the parameters from left to right and stops at
+     * the first one that is not true as defined by {@link #FN_IS_TRUE}. Returns
+     * true only if all the parameters are true.
+     */
+    public static CustomMacro MC_AND = CustomMacro.withExpressionParams((Evaluator evaluator, Object... objs) -> {
+        return Arrays.asList("identity", shortCircuit(evaluator, false, objs));
+    });
+
+    /**
+     * Short-circuit or, evaluates the parameters from left to right and stops at
+     * the first one that is true as defined by {@link #FN_IS_TRUE}. Returns false
+     * only if none of the parameters are true.
+     */
+    public static CustomMacro MC_OR = CustomMacro.withExpressionParams((Evaluator evaluator, Object... objs) -> {
+        return Arrays.asList("identity", shortCircuit(evaluator, true, objs));
+    });
+
+    /**
+     * Evaluates the given parameters in order, until one of them evaluates to the
+     * given decisive value.
+     *
+     * @param evaluator The evaluator to evaluate the parameters with.
+     * @param decisive  The value that decides the result, false for and, true for
+     *                  or.
+     * @param objs      The parameters to be evaluated.
+     * @return The decisive value if any of the parameters evaluated to it, the
+     * negation of it otherwise.
+     */
+    static boolean shortCircuit(Evaluator evaluator, boolean decisive, Object... objs) {
+        for (Object obj : objs) {
+            if (isTrue(evaluator, obj) == decisive) {
+                return decisive;
+            }
+        }
+        return !decisive;
+    }
+
+    /**
+     * Evaluates the given expression with {@link #FN_IS_TRUE}.
+     *
+     * @param evaluator The evaluator to evaluate the expression with.
+     * @param expr      The expression or literal to be tested.
+     * @return true if the expression evaluated to true, false otherwise.
+     */
+    static boolean isTrue(Evaluator evaluator, Object expr) {
+        return Boolean.valueOf(evaluator.evaluate(Arrays.asList("true?", expr)).toString());
+    }
 }
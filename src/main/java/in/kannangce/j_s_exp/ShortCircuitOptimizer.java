@@ -0,0 +1,438 @@
+package in.kannangce.j_s_exp;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import in.kannangce.j_s_exp.Evaluator.CustomMacro;
+
+/**
+ * Adaptive version of the short-circuit operators {@link Operators#MC_AND} and
+ * {@link Operators#MC_OR}.
+ * <p>
+ * The optimizer samples, for every argument sub-tree, how often it decides the
+ * result of the operator and how long it takes to evaluate. Based on that, the
+ * arguments are reordered so that the cheap and decisive ones are evaluated
+ * first.
+ * <p>
+ * Reordering is only valid for the arguments that don't modify the context.
+ * It's caller responsibility to register the macros of this class only for
+ * such expressions. An argument may fail where the written order skips it,
+ * like the condition after a null check. The sampled evaluations evaluate all
+ * the arguments, and an argument seen failing after the deciding one is never
+ * moved ahead of the arguments written before it. The failures that never
+ * occur in a sampled evaluation are unknown to the optimizer, so for the
+ * guards of rare failures, {@link Mode#DISABLED} is to be used.
+ * <p>
+ * The statistics are kept per argument sub-tree instance, or per position for
+ * the {@link CompactExpression}s. The sub-trees are weakly referred, so the
+ * statistics of the unloaded expressions are discarded along with them.
+ *
+ * @author kannan.r
+ */
+public class ShortCircuitOptimizer {
+
+    /**
+     * Tells how the optimizer orders the arguments.
+     */
+    public static enum Mode {
+        /**
+         * Keeps sampling the statistics and reorders the arguments by them.
+         */
+        ADAPTIVE,
+        /**
+         * Stops sampling and keeps using the order learnt so far.
+         */
+        PINNED,
+        /**
+         * Evaluates the arguments in the written order.
+         */
+        DISABLED
+    }
+
+    private static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    private static final int DEFAULT_MIN_SAMPLES = 8;
+
+    private static final int DEFAULT_MAX_TRACKED_SUBTREES = 10_000;
+
+    private final int sampleInterval;
+
+    private final int minSamples;
+
+    private final int maxTrackedSubtrees;
+
+    private final Map<Object, Stats> stats = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<Object> staleKeys = new ReferenceQueue<>();
+
+    private volatile Mode mode = Mode.ADAPTIVE;
+
+    /**
+     * Creates an optimizer that samples one in every 64 evaluations, and starts
+     * reordering after 8 samples.
+     */
+    public ShortCircuitOptimizer() {
+        this(DEFAULT_SAMPLE_INTERVAL, DEFAULT_MIN_SAMPLES, DEFAULT_MAX_TRACKED_SUBTREES);
+    }
+
+    /**
+     * Creates an optimizer instance.
+     *
+     * @param sampleInterval     On average, one in every these many evaluations
+     *                           will be sampled. 1 samples every evaluation.
+     * @param minSamples         The number of samples needed for an argument
+     *                           before it is reordered.
+     * @param maxTrackedSubtrees The maximum number of sub-trees, for which the
+     *                           statistics will be kept. The sub-trees beyond
+     *                           that will be evaluated in the written order.
+     */
+    public ShortCircuitOptimizer(int sampleInterval, int minSamples, int maxTrackedSubtrees) {
+        if (sampleInterval < 1 || minSamples < 1 || maxTrackedSubtrees < 0) {
+            throw new IllegalArgumentException("Invalid configuration for the optimizer");
+        }
+        this.sampleInterval = sampleInterval;
+        this.minSamples = minSamples;
+        this.maxTrackedSubtrees = maxTrackedSubtrees;
+    }
+
+    /**
+     * Gets the adaptive equivalent of {@link Operators#MC_AND}.
+     *
+     * @return The macro for and.
+     */
+    public CustomMacro and() {
+        return CustomMacro.withExpressionParams((Evaluator evaluator, Object... objs) -> {
+            return Arrays.asList("identity", apply(evaluator, false, objs));
+        });
+    }
+
+    /**
+     * Gets the adaptive equivalent of {@link Operators#MC_OR}.
+     *
+     * @return The macro for or.
+     */
+    public CustomMacro or() {
+        return CustomMacro.withExpressionParams((Evaluator evaluator, Object... objs) -> {
+            return Arrays.asList("identity", apply(evaluator, true, objs));
+        });
+    }
+
+    /**
+     * Sets the mode of the optimizer.
+     *
+     * @param mode The mode to be used for the subsequent evaluations.
+     */
+    public void setMode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode can't be null");
+        }
+        this.mode = mode;
+    }
+
+    /**
+     * Gets the mode of the optimizer.
+     *
+     * @return The current mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Discards all the statistics sampled so far.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Evaluates the short-circuit operator for the given arguments.
+     *
+     * @param evaluator The evaluator to evaluate the arguments with.
+     * @param decisive  The value that decides the result, false for and, true for
+     *                  or.
+     * @param objs      The arguments of the operator.
+     * @return The result of the operator.
+     */
+    private boolean apply(Evaluator evaluator, boolean decisive, Object... objs) {
+        Mode currMode = mode;
+        if (currMode == Mode.DISABLED || objs.length < 2) {
+            return Operators.shortCircuit(evaluator, decisive, objs);
+        }
+        if (currMode == Mode.ADAPTIVE && ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+            return sample(evaluator, decisive, objs);
+        }
+        return Operators.shortCircuit(evaluator, decisive, order(objs));
+    }
+
+    /**
+     * Evaluates all the arguments, recording the statistics of each of them.
+     *
+     * @param evaluator The evaluator to evaluate the arguments with.
+     * @param decisive  The value that decides the result.
+     * @param objs      The arguments of the operator.
+     * @return The result of the operator.
+     */
+    private boolean sample(Evaluator evaluator, boolean decisive, Object... objs) {
+        expungeStaleKeys();
+
+        boolean decided = false;
+        for (Object obj : objs) {
+            long start = System.nanoTime();
+            boolean isDecisive;
+            boolean failed = false;
+            try {
+                isDecisive = Operators.isTrue(evaluator, obj) == decisive;
+            } catch (RuntimeException e) {
+                if (!decided) {
+                    throw e;
+                }
+                // The written order wouldn't have evaluated it, e.g the guarded
+                // condition of a failed guard.
+                isDecisive = false;
+                failed = true;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            decided |= isDecisive;
+            Lookup key = keyOf(obj);
+            if (key != null) {
+                Stats objStats = stats.get(key);
+                if (objStats == null && stats.size() < maxTrackedSubtrees) {
+                    objStats = stats.computeIfAbsent(new WeakKey(key, staleKeys), k -> new Stats());
+                }
+                if (objStats != null) {
+                    objStats.record(isDecisive, failed, elapsed);
+                }
+            }
+        }
+        return decided ? decisive : !decisive;
+    }
+
+    /**
+     * Orders the given arguments by their statistics. The literals come first as
+     * they cost nothing to evaluate. The arguments seen failing are never moved
+     * ahead of the arguments written before them. If any of the sub-trees is yet
+     * to have sufficient samples, the written order is retained.
+     *
+     * @param objs The arguments to be ordered.
+     * @return The arguments in the order to be evaluated.
+     */
+    private Object[] order(Object... objs) {
+        double[] scores = new double[objs.length];
+        boolean[] failed = new boolean[objs.length];
+        for (int i = 0; i < objs.length; i++) {
+            Lookup key = keyOf(objs[i]);
+            if (key != null) {
+                Stats objStats = stats.get(key);
+                if (objStats == null || objStats.samples() < minSamples) {
+                    return objs;
+                }
+                scores[i] = objStats.score();
+                failed[i] = objStats.failed();
+            }
+        }
+
+        // Stable insertion sort, the number of arguments is typically small.
+        Object[] ordered = objs.clone();
+        for (int i = 1; i < ordered.length; i++) {
+            Object currObj = ordered[i];
+            double currScore = scores[i];
+            int j = i - 1;
+            // The ones before it are exactly those written before it, so a failing
+            // argument stays where it is. The later ones can still pass it.
+            while (!failed[i] && j >= 0 && scores[j] > currScore) {
+                ordered[j + 1] = ordered[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ordered[j + 1] = currObj;
+            scores[j + 1] = currScore;
+        }
+        return ordered;
+    }
+
+    /**
+     * Removes the statistics of the sub-trees that are no more referred.
+     */
+    private void expungeStaleKeys() {
+        Reference<?> staleKey;
+        while ((staleKey = staleKeys.poll()) != null) {
+            stats.remove(staleKey);
+        }
+    }
+
+    /**
+     * Gets the key of the statistics for the given argument.
+     *
+     * @param obj The argument of the operator.
+     * @return The key for the sub-tree, null for the literals.
+     */
+    private static Lookup keyOf(Object obj) {
+        if (obj instanceof CompactExpression.Node) {
+            // The views are created for every evaluation, key by their position.
+            CompactExpression.Node node = (CompactExpression.Node) obj;
+            return new Lookup(node.expression(), node.position());
+        }
+        if (obj instanceof List) {
+            return new Lookup(obj, -1);
+        }
+        return null;
+    }
+
+    /**
+     * Identity of a sub-tree, the referent along with the position within it.
+     */
+    private static interface Key {
+
+        Object referent();
+
+        int position();
+
+        /**
+         * Tells if the given key refers to the same sub-tree, comparing the
+         * referents by identity.
+         */
+        default boolean sameAs(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            Object currReferent = referent();
+            return currReferent != null && currReferent == other.referent() && position() == other.position();
+        }
+
+        static int hash(Object referent, int position) {
+            return 31 * System.identityHashCode(referent) + position;
+        }
+    }
+
+    /**
+     * Key used to look up the statistics, without holding the sub-tree.
+     */
+    private static final class Lookup implements Key {
+
+        private final Object referent;
+
+        private final int position;
+
+        Lookup(Object referent, int position) {
+            this.referent = referent;
+            this.position = position;
+        }
+
+        @Override
+        public Object referent() {
+            return referent;
+        }
+
+        @Override
+        public int position() {
+            return position;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameAs(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return Key.hash(referent, position);
+        }
+    }
+
+    /**
+     * Key under which the statistics are stored, weakly referring the sub-tree.
+     */
+    private static final class WeakKey extends WeakReference<Object> implements Key {
+
+        private final int position;
+
+        private final int hash;
+
+        WeakKey(Lookup lookup, ReferenceQueue<Object> queue) {
+            super(lookup.referent(), queue);
+            this.position = lookup.position();
+            this.hash = lookup.hashCode();
+        }
+
+        @Override
+        public Object referent() {
+            return get();
+        }
+
+        @Override
+        public int position() {
+            return position;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || sameAs(obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Statistics sampled for an argument sub-tree.
+     */
+    private static class Stats {
+
+        private volatile long samples;
+
+        private long decisiveCount;
+
+        private long totalNanos;
+
+        private volatile boolean failed;
+
+        private volatile double score;
+
+        /**
+         * Records a sampled evaluation.
+         *
+         * @param isDecisive Whether the evaluation decided the result of the
+         *                   operator.
+         * @param failed     Whether the evaluation failed.
+         * @param nanos      The time taken for the evaluation.
+         */
+        synchronized void record(boolean isDecisive, boolean failed, long nanos) {
+            if (failed) {
+                this.failed = true;
+            }
+            samples++;
+            if (isDecisive) {
+                decisiveCount++;
+            }
+            totalNanos += nanos;
+
+            // Expected cost spent per decision. Laplace smoothing keeps the never
+            // decisive arguments finite, but still behind the decisive ones.
+            double decisiveRatio = (decisiveCount + 1.0) / (samples + 2.0);
+            score = ((double) totalNanos / samples) / decisiveRatio;
+        }
+
+        long samples() {
+            return samples;
+        }
+
+        double score() {
+            return score;
+        }
+
+        boolean failed() {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package in.kannangce.j_s_exp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import in.kannangce.exception.UnsupportedOperatorException;
+
+public class CompactExpressionTest {
+
+    private final List<String> ctxt = new ArrayList<>();
+
+    private final Evaluator.CustomFunction updateContext = (context, args) -> {
+        ((List) context).add(args[0]);
+        return args[0];
+    };
+
+    private final Evaluator evaluatorInstance = new Evaluator(ctxt,
+            Map.of("true?", Operators.FN_IS_TRUE,
+                    "identity", Operators.FN_IDENTITY,
+                    "matches", Operators.FN_IS_MATCHES,
+                    "updateContext", updateContext),
+            Map.of("if-else", Operators.MC_IF_ELSE));
+
+    private final String expression = "[\"if-else\"," +
+            "[\"matches\", [\"updateContext\", \"result\"], \"^r.*t$\"], " +
+            "[\"identity\", [\"updateContext\", 17.29], [\"updateContext\", null]], " +
+            "\"false-path\"]";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression(expression);
+
+        CompactExpression compact = CompactExpression.encode(parsedExpression, new ConstantPool());
+
+        assertEquals(compact.toList(), parsedExpression,
+                () -> "Decoded expression expected to be same as the encoded one");
+    }
+
+    @Test
+    public void testEvaluateSameAsList() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression(expression);
+
+        Object expectedResult = evaluatorInstance.evaluate(parsedExpression);
+        List<String> expectedCtxt = new ArrayList<>(ctxt);
+        ctxt.clear();
+
+        CompactExpression compact = CompactExpression.encode(parsedExpression, new ConstantPool());
+
+        assertEquals(evaluatorInstance.evaluate(compact), expectedResult,
+                () -> "Encoded expression expected to evaluate to the same result");
+        assertEquals(ctxt, expectedCtxt,
+                () -> "Encoded expression expected to evaluate the functions in the same order");
+    }
+
+    @Test
+    public void testMacroParamsNotDecoded() throws Exception {
+        List<Object> macroParams = new ArrayList<>();
+
+        Evaluator.CustomMacro recordingIfElse = (evaluator, params) -> {
+            macroParams.addAll(Arrays.asList(params));
+            return Operators.MC_IF_ELSE.apply(evaluator, params);
+        };
+
+        Evaluator evaluatorInstance = new Evaluator(ctxt,
+                Map.of("true?", Operators.FN_IS_TRUE,
+                        "identity", Operators.FN_IDENTITY,
+                        "matches", Operators.FN_IS_MATCHES,
+                        "updateContext", updateContext),
+                Map.of("if-else", recordingIfElse));
+
+        CompactExpression compact = CompactExpression.encode(
+                EvaluatorTest.parseExpression(expression), new ConstantPool());
+
+        assertEquals(evaluatorInstance.evaluate(compact), 17.29,
+                () -> "Macro rooted expression expected to be evaluated");
+        assertEquals(ctxt, Arrays.asList("result", null, 17.29),
+                () -> "Only the condition and the true path expected to be evaluated");
+
+        assertEquals(macroParams.size(), 3, () -> "Macro expected to get all its params");
+        for (Object param : macroParams) {
+            if (param instanceof List) {
+                assertTrue(param instanceof CompactExpression.Node,
+                        () -> "Macro params expected to be views over the encoded words, not decoded trees");
+            }
+        }
+    }
+
+    @Test
+    public void testArena() throws Exception {
+        ExpressionArena arena = new ExpressionArena(new ConstantPool(), 16);
+
+        CompactExpression first = arena.add(EvaluatorTest.parseExpression("[\"identity\", \"first\"]"));
+        CompactExpression second = arena.add(EvaluatorTest.parseExpression("[\"identity\", \"second\"]"));
+        CompactExpression oversized = arena.add(EvaluatorTest.parseExpression(
+                "[\"identity\", [\"identity\", [\"identity\", \"oversized\"]], 1, 2]"));
+
+        assertEquals(evaluatorInstance.evaluate(first), "first",
+                () -> "Expression expected to be evaluated from the arena");
+        assertEquals(evaluatorInstance.evaluate(second), "second",
+                () -> "Expression expected to be evaluated from the arena");
+        assertEquals(evaluatorInstance.evaluate(oversized), "oversized",
+                () -> "Expression bigger than the chunk expected to be evaluated from the arena");
+    }
+
+    @Test
+    public void testPackedInSingleBuffer() throws Exception {
+        ConstantPool pool = new ConstantPool();
+        CompactExpression first = CompactExpression.encode(
+                EvaluatorTest.parseExpression("[\"identity\", \"first\"]"), pool);
+        CompactExpression second = CompactExpression.encode(
+                EvaluatorTest.parseExpression("[\"identity\", [\"identity\", \"second\"]]"), pool);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        int firstBytes = first.writeTo(buffer);
+        second.writeTo(buffer);
+
+        CompactExpression secondFromBuffer = CompactExpression.wrap(buffer, firstBytes, second.size(), pool);
+
+        assertEquals(evaluatorInstance.evaluate(secondFromBuffer), "second",
+                () -> "Expression expected to be read back from the shared buffer");
+    }
+
+    @Test
+    public void testWrapOutsideLimit() throws Exception {
+        CompactExpression compact = CompactExpression.encode(
+                EvaluatorTest.parseExpression("[\"identity\", \"first\"]"), new ConstantPool());
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        compact.writeTo(buffer);
+        buffer.flip().limit(Integer.BYTES);
+
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> CompactExpression.wrap(buffer, 0, compact.size(), compact.pool()),
+                () -> "Region beyond the limit expected to be rejected");
+    }
+
+    @Test
+    public void testNodeIteration() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression(
+                "[\"and\", [\"identity\", 1], true, [\"matches\", \"abc\", \"a.*\"], null]");
+
+        CompactExpression compact = CompactExpression.encode(parsedExpression, new ConstantPool());
+        CompactExpression.Node node = new CompactExpression.Node(compact, 0);
+
+        assertEquals(new ArrayList<>(node), parsedExpression,
+                () -> "View expected to iterate the elements in the written order");
+        assertEquals(node.toString(), parsedExpression.toString(),
+                () -> "View expected to print the same as the decoded expression");
+        assertEquals(node.hashCode(), parsedExpression.hashCode(),
+                () -> "View expected to hash the same as the decoded expression");
+    }
+
+    @Test
+    public void testPoolSharesLiteralsAndOperators() throws Exception {
+        ConstantPool pool = new ConstantPool();
+
+        CompactExpression.encode(EvaluatorTest.parseExpression("[\"matches\", \"abc\", \"a.*\"]"), pool);
+        CompactExpression.encode(EvaluatorTest.parseExpression("[\"matches\", \"abc\", [\"identity\", 1]]"), pool);
+
+        assertEquals(pool.operatorCount(), 2, () -> "Expected to hold matches and identity once");
+        assertEquals(pool.constantCount(), 3, () -> "Expected to hold abc, a.* and 1 once");
+    }
+
+    @Test
+    public void testUnallowedFunctions() throws Exception {
+        CompactExpression compact = CompactExpression.encode(
+                EvaluatorTest.parseExpression("[\"unknown\", \"result\"]"), new ConstantPool());
+
+        assertThrows(UnsupportedOperatorException.class, () -> evaluatorInstance.evaluate(compact),
+                () -> "Expression expected to throw exception when not added to allowed functions");
+    }
+
+    @Test
+    public void testInvalidExpression() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"identity\", [1, 2]]");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactExpression.encode(parsedExpression, new ConstantPool()),
+                () -> "Expression without operator expected to be rejected");
+    }
+}
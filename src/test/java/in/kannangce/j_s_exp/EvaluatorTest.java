@@ -1,8 +1,10 @@
 package in.kannangce.j_s_exp;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -129,6 +131,102 @@ public class EvaluatorTest {
 
     }
 
+    @Test
+    public void testExpandSafeMacro() throws Exception {
+        int[] expansions = { 0 };
+
+        // Wraps the parameter with identity, without evaluating it.
+        Evaluator.CustomMacro wrap = Evaluator.CustomMacro.expansionTimeSafe((evaluator, params) -> {
+            expansions[0]++;
+            return Arrays.asList("identity", params[0]);
+        });
+
+        Evaluator evaluatorInstance = new Evaluator(null,
+                Map.of("identity", Operators.FN_IDENTITY, "matches", Operators.FN_IS_MATCHES),
+                Map.of("wrap", wrap));
+
+        List<Object> expressionWithMacro = parseExpression("[\"matches\", " +
+                "[\"wrap\", [\"wrap\", \"result\"]], \"^r.*t$\"]");
+
+        List<Object> expanded = evaluatorInstance.expand(expressionWithMacro);
+
+        assertEquals(expanded, parseExpression("[\"matches\", " +
+                        "[\"identity\", [\"identity\", \"result\"]], \"^r.*t$\"]"),
+                () -> "Safe macros expected to be replaced by their expansion recursively");
+
+        expansions[0] = 0;
+
+        assertEquals(evaluatorInstance.evaluate(expanded), true,
+                () -> "Expanded expression expected to evaluate to the same result");
+        assertEquals(expansions[0], 0,
+                () -> "Expanded expression expected not to expand the macro on evaluation");
+    }
+
+    @Test
+    public void testExpandRetainsUnsafeMacro() throws Exception {
+        Evaluator evaluatorInstance = new Evaluator(null,
+                Map.of("true?", Operators.FN_IS_TRUE, "identity", Operators.FN_IDENTITY),
+                Map.of("if-else", Operators.MC_IF_ELSE));
+
+        List<Object> expressionWithMacro = parseExpression("[\"identity\", " +
+                "[\"if-else\", true, \"true-path\", \"false-path\"]]");
+
+        assertSame(evaluatorInstance.expand(expressionWithMacro), expressionWithMacro,
+                () -> "Expression without safe macros expected to be returned as is");
+    }
+
+    @Test
+    public void testExpandSafeMacroUnderIfElse() throws Exception {
+        Evaluator.CustomMacro wrap = Evaluator.CustomMacro.expansionTimeSafe(
+                (evaluator, params) -> Arrays.asList("identity", params[0]));
+
+        // Inspects its param un-evaluated, so the param can't be expanded.
+        Evaluator.CustomMacro quote = (evaluator, params) -> Arrays.asList("identity", params[0].toString());
+
+        Evaluator evaluatorInstance = new Evaluator(null,
+                Map.of("true?", Operators.FN_IS_TRUE, "identity", Operators.FN_IDENTITY),
+                Map.of("if-else", Operators.MC_IF_ELSE, "wrap", wrap, "quote", quote));
+
+        List<Object> expressionWithMacro = parseExpression("[\"if-else\", true, " +
+                "[\"wrap\", \"x\"], " +
+                "[\"quote\", [\"wrap\", \"y\"]]]");
+
+        List<Object> expanded = evaluatorInstance.expand(expressionWithMacro);
+
+        assertEquals(expanded, parseExpression("[\"if-else\", true, " +
+                        "[\"identity\", \"x\"], " +
+                        "[\"quote\", [\"wrap\", \"y\"]]]"),
+                () -> "Safe macro under if-else expected to be expanded, but not the one under quote");
+        assertEquals(evaluatorInstance.evaluate(expanded), evaluatorInstance.evaluate(expressionWithMacro),
+                () -> "Expanded expression expected to evaluate to the same result");
+    }
+
+    @Test
+    public void testExpandUnallowedFunctions() throws Exception {
+        Evaluator evaluatorInstance = new Evaluator(null, Map.of("identity", Operators.FN_IDENTITY), null);
+
+        List<Object> nestedOperators = parseExpression("[\"identity\" , [\"matches\", \"result\", \"^r.*t$\"]]");
+
+        List<Object> expanded = evaluatorInstance.expand(nestedOperators);
+
+        assertSame(expanded, nestedOperators,
+                () -> "Expression with functions not allowed expected to be returned as is");
+        assertThrows(UnsupportedOperatorException.class, () -> evaluatorInstance.evaluate(expanded),
+                () -> "Expression expected to throw exception on evaluation when not added to allowed functions");
+    }
+
+    @Test
+    public void testExpandUnallowedFunctionsInUnevaluatedPath() throws Exception {
+        Evaluator evaluatorInstance = new Evaluator(null,
+                Map.of("true?", Operators.FN_IS_TRUE, "identity", Operators.FN_IDENTITY),
+                Map.of("if-else", Operators.MC_IF_ELSE));
+
+        List<Object> expressionWithMacro = parseExpression("[\"if-else\", true, \"x\", [\"not-registered\"]]");
+
+        assertEquals(evaluatorInstance.evaluate(evaluatorInstance.expand(expressionWithMacro)), "x",
+                () -> "Function not allowed in the path not evaluated expected not to fail");
+    }
+
     /**
      * Parses given JSON-List and returns equivalent tree(nested-list).
      *
@@ -16,7 +16,9 @@ public class OperatorsTest {
                     "true?", Operators.FN_IS_TRUE,
                     "identity", Operators.FN_IDENTITY,
                     "matches", Operators.FN_IS_MATCHES),
-            Map.of("if-else", Operators.MC_IF_ELSE));
+            Map.of("if-else", Operators.MC_IF_ELSE,
+                    "and", Operators.MC_AND,
+                    "or", Operators.MC_OR));
 
     @Test
     public  void testAlways() throws Exception {
@@ -257,4 +259,59 @@ public class OperatorsTest {
         assertEquals(ctxt.contains("true-path"), false,
                 () -> "Expected to contain values only from the evaulated path");
     }
+
+    @Test
+    public  void testAndAllTrue() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\", true, [\"identity\", \"true\"]]");
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), true,
+                () -> "and expected to return true when all the params are true");
+    }
+
+    @Test
+    public  void testAndOneFalse() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\", true, [\"identity\", false]]");
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                () -> "and expected to return false when any of the params is false");
+    }
+
+    @Test
+    public  void testOrOneTrue() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"or\", false, [\"matches\", \"abc\", \"a.*\"]]");
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), true,
+                () -> "or expected to return true when any of the params is true");
+    }
+
+    @Test
+    public  void testOrNoParam() throws Exception {
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"or\"]");
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                () -> "or expected to return false when there are no params");
+    }
+
+    @Test
+    public  void testAndShortCircuits() throws Exception {
+        List<String> ctxt = new ArrayList<>();
+
+        Evaluator.CustomFunction updateContext = (context, args) -> { ((List)context).add(args[0]); return args[0]; };
+
+        Evaluator evaluatorInstance = new Evaluator(ctxt,
+                Map.of("true?", Operators.FN_IS_TRUE,
+                        "identity", Operators.FN_IDENTITY,
+                        "updateContext", updateContext),
+                Map.of("and", Operators.MC_AND));
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"updateContext\" , \"false\"], " +
+                "[\"updateContext\" , \"true\"]]");
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                () -> "Expected to return false");
+
+        assertEquals(ctxt, List.of("false"),
+                () -> "Expected to stop evaluating after the first false param");
+    }
 }
@@ -0,0 +1,203 @@
+package in.kannangce.j_s_exp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ShortCircuitOptimizerTest {
+
+    private final List<String> ctxt = new ArrayList<>();
+
+    // Records the call and returns the first param, after waiting for the
+    // milliseconds given in the second param.
+    private final Evaluator.CustomFunction probe = (context, args) -> {
+        ((List) context).add(args[0]);
+        try {
+            Thread.sleep(((Number) args[1]).longValue());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return args[0];
+    };
+
+    private final Evaluator.CustomFunction fail = (context, args) -> {
+        throw new IllegalStateException("Not expected to be evaluated");
+    };
+
+    private Evaluator evaluatorWith(ShortCircuitOptimizer optimizer) {
+        return new Evaluator(ctxt,
+                Map.of("true?", Operators.FN_IS_TRUE,
+                        "identity", Operators.FN_IDENTITY,
+                        "probe", probe,
+                        "fail", fail),
+                Map.of("and", optimizer.and(), "or", optimizer.or()));
+    }
+
+    @Test
+    public void testReordersCheapDecisiveFirst() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 4, 100);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"probe\", \"true\", 5], " +
+                "[\"probe\", \"false\", 0]]");
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                    () -> "Sampled evaluation expected to return the same result");
+        }
+
+        optimizer.setMode(ShortCircuitOptimizer.Mode.PINNED);
+        ctxt.clear();
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                () -> "Reordered evaluation expected to return the same result");
+        assertEquals(ctxt, List.of("false"),
+                () -> "Cheap and decisive param expected to be evaluated first");
+    }
+
+    @Test
+    public void testWrittenOrderBeforeSufficientSamples() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 4, 100);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"or\"," +
+                "[\"probe\", \"false\", 5], " +
+                "[\"probe\", \"true\", 0]]");
+
+        evaluatorInstance.evaluate(parsedExpression);
+
+        optimizer.setMode(ShortCircuitOptimizer.Mode.PINNED);
+        ctxt.clear();
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), true,
+                () -> "Expected to return true");
+        assertEquals(ctxt, List.of("false", "true"),
+                () -> "Params expected to be evaluated in the written order");
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 1, 100);
+        optimizer.setMode(ShortCircuitOptimizer.Mode.DISABLED);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"probe\", \"false\", 0], " +
+                "[\"probe\", \"true\", 0]]");
+
+        for (int i = 0; i < 4; i++) {
+            evaluatorInstance.evaluate(parsedExpression);
+        }
+
+        assertEquals(ctxt, List.of("false", "false", "false", "false"),
+                () -> "Disabled optimizer expected to short-circuit in the written order");
+    }
+
+    @Test
+    public void testSamplingIgnoresFailuresAfterDecision() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 1, 100);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"probe\", \"false\", 0], " +
+                "[\"fail\"]]");
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                    () -> "Failure of the param after the deciding one expected to be ignored");
+        }
+    }
+
+    @Test
+    public void testGuardedParamNotMovedAheadOfGuard() throws Exception {
+        String[] value = { null };
+
+        Evaluator.CustomFunction get = (context, args) -> value[0];
+
+        // Costly, so that it would be moved behind the guarded param by cost.
+        Evaluator.CustomFunction notNull = (context, args) -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return args[0] != null;
+        };
+
+        // Fails for null, which the guard protects against.
+        Evaluator.CustomFunction isShort = (context, args) -> args[0].toString().length() < 5;
+
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 4, 100);
+        Evaluator evaluatorInstance = new Evaluator(null,
+                Map.of("true?", Operators.FN_IS_TRUE,
+                        "identity", Operators.FN_IDENTITY,
+                        "get", get,
+                        "notNull?", notNull,
+                        "short?", isShort),
+                Map.of("and", optimizer.and()));
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"notNull?\", [\"get\"]], " +
+                "[\"short?\", [\"get\"]]]");
+
+        for (int i = 0; i < 4; i++) {
+            for (String currValue : new String[] { "hi", "a long value", "another long value", null }) {
+                value[0] = currValue;
+                evaluatorInstance.evaluate(parsedExpression);
+            }
+        }
+
+        optimizer.setMode(ShortCircuitOptimizer.Mode.PINNED);
+        value[0] = null;
+
+        assertEquals(evaluatorInstance.evaluate(parsedExpression), false,
+                () -> "Guarded param expected not to be evaluated ahead of its guard");
+    }
+
+    @Test
+    public void testSamplingPropagatesFailuresBeforeDecision() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 1, 100);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        List<Object> parsedExpression = EvaluatorTest.parseExpression("[\"and\"," +
+                "[\"fail\"], " +
+                "[\"probe\", \"false\", 0]]");
+
+        assertThrows(IllegalStateException.class, () -> evaluatorInstance.evaluate(parsedExpression),
+                () -> "Failure that the written order would face expected to be propagated");
+    }
+
+    @Test
+    public void testReordersCompactExpression() throws Exception {
+        ShortCircuitOptimizer optimizer = new ShortCircuitOptimizer(1, 4, 100);
+        Evaluator evaluatorInstance = evaluatorWith(optimizer);
+
+        CompactExpression compact = CompactExpression.encode(EvaluatorTest.parseExpression("[\"or\"," +
+                "[\"probe\", \"false\", 5], " +
+                "[\"probe\", \"true\", 0]]"), new ConstantPool());
+
+        for (int i = 0; i < 4; i++) {
+            evaluatorInstance.evaluate(compact);
+        }
+
+        optimizer.setMode(ShortCircuitOptimizer.Mode.PINNED);
+        ctxt.clear();
+
+        assertEquals(evaluatorInstance.evaluate(compact), true,
+                () -> "Reordered evaluation expected to return the same result");
+        assertEquals(ctxt, List.of("true"),
+                () -> "Statistics expected to be kept across the evaluations of the encoded expression");
+    }
+
+    @Test
+    public void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new ShortCircuitOptimizer(0, 1, 1),
+                () -> "Sample interval expected to be positive");
+    }
+}